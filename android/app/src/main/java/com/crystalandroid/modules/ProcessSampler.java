@@ -0,0 +1,298 @@
+package com.crystalandroid.modules;
+
+import android.system.Os;
+import android.system.OsConstants;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads per-process resource usage from /proc. A single snapshot of the process
+ * table is taken per tick so every session's child tree is resolved from the same view.
+ */
+class ProcessSampler {
+    private final Map<Integer, List<Integer>> childrenByParent = new HashMap<>();
+    private final Map<Integer, ProcStat> statsByPid = new HashMap<>();
+
+    static class ProcStat {
+        int ppid;
+        long cpuTicks;
+        long rssPages;
+        int threads;
+        long startTime;
+    }
+
+    static class Usage {
+        final List<Integer> pids = new ArrayList<>();
+        long cpuTicks;
+        long rssPages;
+        long cpuTimeMs;
+        long rssBytes;
+        int threadCount;
+        long readBytes;
+        long writeBytes;
+    }
+
+    // Kept out of ProcessSampler's own static init so the pure parsing code can run off-device
+    private static final class Sysconf {
+        static final long CLOCK_TICKS = sysconf(OsConstants._SC_CLK_TCK, 100);
+        static final long PAGE_SIZE = sysconf(OsConstants._SC_PAGESIZE, 4096);
+    }
+
+    /**
+     * Parses a /proc/[pid]/stat line, or returns null if it is malformed. CPU time
+     * includes cutime/cstime so work done by reaped children is not lost when they exit.
+     */
+    static ProcStat parseStat(String line) {
+        if (line == null) {
+            return null;
+        }
+        // comm may contain spaces and parentheses, so parse from the last ')'
+        int end = line.lastIndexOf(')');
+        if (end < 0 || end + 2 > line.length()) {
+            return null;
+        }
+        String[] fields = line.substring(end + 2).split(" ");
+        if (fields.length < 22) {
+            return null;
+        }
+        try {
+            ProcStat ps = new ProcStat();
+            ps.ppid = Integer.parseInt(fields[1]);
+            ps.cpuTicks = Long.parseLong(fields[11]) + Long.parseLong(fields[12])
+                + Long.parseLong(fields[13]) + Long.parseLong(fields[14]);
+            ps.threads = Integer.parseInt(fields[17]);
+            ps.startTime = Long.parseLong(fields[19]);
+            ps.rssPages = Long.parseLong(fields[21]);
+            return ps;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Adds the read_bytes/write_bytes counters of a /proc/[pid]/io line to {@code usage}. */
+    static void parseIoLine(String line, Usage usage) {
+        try {
+            if (line.startsWith("read_bytes:")) {
+                usage.readBytes += Long.parseLong(line.substring(11).trim());
+            } else if (line.startsWith("write_bytes:")) {
+                usage.writeBytes += Long.parseLong(line.substring(12).trim());
+            }
+        } catch (NumberFormatException e) {
+            // Ignore malformed counters
+        }
+    }
+
+    /**
+     * Returns the pid of a process started by {@link ProcessBuilder}, or -1 if it
+     * can't be determined. Android's Process implementations keep it in a private
+     * field, which is a non-SDK interface, so callers should fall back to
+     * {@link #findChildPid} when this fails.
+     */
+    static int pidOf(Process process) {
+        if (process == null) {
+            return -1;
+        }
+        try {
+            Field field = process.getClass().getDeclaredField("pid");
+            field.setAccessible(true);
+            return field.getInt(process);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Finds the pid of a freshly started {@code sh -c command} child of this app
+     * by matching parent and cmdline in /proc. Used when the platform Process
+     * doesn't expose its pid. Returns -1 if there is no match; if several match,
+     * the most recently started one not listed in {@code claimed} wins.
+     */
+    static int findChildPid(String command, List<Integer> claimed) {
+        String expected = "sh\0-c\0" + command + "\0";
+        int self = Os.getpid();
+        int best = -1;
+        long bestStart = -1;
+
+        File[] entries = new File("/proc").listFiles();
+        if (entries == null) {
+            return -1;
+        }
+        for (File entry : entries) {
+            int pid = parsePid(entry.getName());
+            if (pid <= 0 || claimed.contains(pid)) {
+                continue;
+            }
+            ProcStat ps = parseStat(readFirstLine(new File(entry, "stat")));
+            if (ps == null || ps.ppid != self || ps.startTime <= bestStart) {
+                continue;
+            }
+            if (expected.equals(readFile(new File(entry, "cmdline")))) {
+                best = pid;
+                bestStart = ps.startTime;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the start time (in clock ticks since boot) of {@code pid}, or -1 if
+     * it isn't running. Pairing it with the pid identifies the process even after
+     * the pid is reused.
+     */
+    static long startTimeOf(int pid) {
+        ProcStat ps = parseStat(readFirstLine(new File("/proc/" + pid + "/stat")));
+        return ps != null ? ps.startTime : -1;
+    }
+
+    /** Rebuilds the process table snapshot used by {@link #sample(int, long)}. */
+    void refresh() {
+        childrenByParent.clear();
+        statsByPid.clear();
+
+        File[] entries = new File("/proc").listFiles();
+        if (entries == null) {
+            return;
+        }
+        for (File entry : entries) {
+            int pid = parsePid(entry.getName());
+            if (pid <= 0) {
+                continue;
+            }
+            ProcStat ps = parseStat(readFirstLine(new File(entry, "stat")));
+            if (ps != null) {
+                // A null stat means the process exited mid-read; skip it
+                put(pid, ps);
+            }
+        }
+    }
+
+    void put(int pid, ProcStat ps) {
+        statsByPid.put(pid, ps);
+
+        List<Integer> children = childrenByParent.get(ps.ppid);
+        if (children == null) {
+            children = new ArrayList<>();
+            childrenByParent.put(ps.ppid, children);
+        }
+        children.add(pid);
+    }
+
+    /**
+     * Sums the snapshot's stats for {@code rootPid} and all of its descendants,
+     * without touching /proc. Returns null if the root process is not present or
+     * its start time differs from {@code rootStartTime}, i.e. the pid was reused.
+     */
+    Usage aggregate(int rootPid, long rootStartTime) {
+        ProcStat root = statsByPid.get(rootPid);
+        if (root == null || root.startTime != rootStartTime) {
+            return null;
+        }
+
+        Usage usage = new Usage();
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.add(rootPid);
+
+        while (!pending.isEmpty()) {
+            int pid = pending.poll();
+            ProcStat ps = statsByPid.get(pid);
+            if (ps == null) {
+                continue;
+            }
+            usage.pids.add(pid);
+            usage.cpuTicks += ps.cpuTicks;
+            usage.rssPages += ps.rssPages;
+            usage.threadCount += ps.threads;
+
+            List<Integer> children = childrenByParent.get(pid);
+            if (children != null) {
+                pending.addAll(children);
+            }
+        }
+        return usage;
+    }
+
+    /**
+     * Aggregates usage for {@code rootPid} and all of its descendants, including
+     * I/O counters, or returns null if the root process is no longer present.
+     */
+    Usage sample(int rootPid, long rootStartTime) {
+        Usage usage = aggregate(rootPid, rootStartTime);
+        if (usage == null) {
+            return null;
+        }
+        for (int pid : usage.pids) {
+            readIo(pid, usage);
+        }
+        usage.cpuTimeMs = usage.cpuTicks * 1000 / Sysconf.CLOCK_TICKS;
+        usage.rssBytes = usage.rssPages * Sysconf.PAGE_SIZE;
+        return usage;
+    }
+
+    private static void readIo(int pid, Usage usage) {
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/" + pid + "/io"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                parseIoLine(line, usage);
+            }
+        } catch (IOException e) {
+            // io accounting may be unavailable or the process already exited
+        }
+    }
+
+    private static String readFirstLine(File file) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            return reader.readLine();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String readFile(File file) {
+        try (FileReader reader = new FileReader(file)) {
+            StringBuilder content = new StringBuilder();
+            char[] buffer = new char[512];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                content.append(buffer, 0, read);
+            }
+            return content.toString();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    static int parsePid(String name) {
+        if (name.isEmpty()) {
+            return -1;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return -1;
+            }
+        }
+        try {
+            return Integer.parseInt(name);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long sysconf(int name, long fallback) {
+        try {
+            long value = Os.sysconf(name);
+            return value > 0 ? value : fallback;
+        } catch (Exception e) {
+            return fallback;
+        }
+    }
+}
\ No newline at end of file
@@ -1,23 +1,49 @@
 package com.crystalandroid.modules;
 
+import android.os.SystemClock;
+import android.system.OsConstants;
+import android.util.Log;
+
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class TerminalModule extends ReactContextBaseJavaModule {
     private static final String MODULE_NAME = "TerminalModule";
-    private final Map<String, TerminalSession> sessions = new HashMap<>();
+    private static final String RESOURCE_USAGE_EVENT = "terminal_resource_usage";
+    private static final int DEFAULT_SAMPLE_INTERVAL_MS = 2000;
+    private static final int MIN_SAMPLE_INTERVAL_MS = 250;
+    // Pauses shorter than this aren't worth the signal round trip
+    private static final long MIN_THROTTLE_MS = 10;
+
+    // Accessed from both the bridge thread and the sampler thread
+    private final Map<String, TerminalSession> sessions = new ConcurrentHashMap<>();
+    private final ProcessSampler sampler = new ProcessSampler();
+    private ScheduledExecutorService samplerExecutor;
+    private ScheduledFuture<?> samplerTask;
+    private int sampleIntervalMs = DEFAULT_SAMPLE_INTERVAL_MS;
+    private double cpuLimitPercent = 0;
+    private long rssLimitBytes = 0;
+    private boolean killOnCpuLimit = false;
     
     public TerminalModule(ReactApplicationContext reactContext) {
         super(reactContext);
@@ -61,20 +87,239 @@ public class TerminalModule extends ReactContextBaseJavaModule {
     @ReactMethod
     public void killSession(String sessionId, Promise promise) {
         try {
-            TerminalSession session = sessions.get(sessionId);
+            TerminalSession session;
+            // Taking the lock keeps the sampler from pausing the tree between removal and stop()
+            synchronized (this) {
+                session = sessions.remove(sessionId);
+                if (session != null) {
+                    resumeThrottled(session);
+                }
+            }
             if (session == null) {
                 promise.reject("SESSION_NOT_FOUND", "Terminal session not found");
                 return;
             }
             
             session.stop();
-            sessions.remove(sessionId);
             promise.resolve(null);
         } catch (Exception e) {
             promise.reject("TERMINAL_KILL_ERROR", e.getMessage());
         }
     }
 
+    @ReactMethod
+    public void getSessionPid(String sessionId, Promise promise) {
+        TerminalSession session = sessions.get(sessionId);
+        if (session == null) {
+            promise.reject("SESSION_NOT_FOUND", "Terminal session not found");
+            return;
+        }
+        if (session.pid <= 0) {
+            promise.reject("PID_UNAVAILABLE", "Could not determine the pid of terminal session " + sessionId);
+            return;
+        }
+        promise.resolve(session.pid);
+    }
+
+    /**
+     * Starts emitting a batched "terminal_resource_usage" event for all sessions.
+     * Options: intervalMs, cpuLimitPercent, rssLimitBytes and limitAction
+     * ("throttle" or "kill"). cpuLimitPercent is relative to a single core, and a
+     * limit of 0 disables it. RSS overruns always kill, since pausing a process
+     * does not release its memory.
+     *
+     * Throttling pauses the tree with SIGSTOP for part of the next interval, sized
+     * from how much CPU it wanted while it was running, then resumes it with SIGCONT.
+     * With steady demand this holds the tree's average usage over each interval near
+     * the limit. Bursts shorter than an interval are not capped, and processes forked
+     * while the tree is paused are only caught on the next tick.
+     */
+    @ReactMethod
+    public synchronized void startResourceSampling(ReadableMap options, Promise promise) {
+        try {
+            int intervalMs = DEFAULT_SAMPLE_INTERVAL_MS;
+            cpuLimitPercent = 0;
+            rssLimitBytes = 0;
+            killOnCpuLimit = false;
+            if (options != null) {
+                if (options.hasKey("intervalMs")) {
+                    intervalMs = Math.max(MIN_SAMPLE_INTERVAL_MS, options.getInt("intervalMs"));
+                }
+                cpuLimitPercent = options.hasKey("cpuLimitPercent") ? options.getDouble("cpuLimitPercent") : 0;
+                rssLimitBytes = options.hasKey("rssLimitBytes") ? (long) options.getDouble("rssLimitBytes") : 0;
+                killOnCpuLimit = options.hasKey("limitAction") && "kill".equals(options.getString("limitAction"));
+            }
+
+            cancelSampling();
+            if (samplerExecutor == null) {
+                samplerExecutor = Executors.newSingleThreadScheduledExecutor();
+            }
+            sampleIntervalMs = intervalMs;
+            samplerTask = samplerExecutor.scheduleWithFixedDelay(
+                this::sampleSessions, 0, intervalMs, TimeUnit.MILLISECONDS);
+            promise.resolve(null);
+        } catch (Exception e) {
+            promise.reject("TERMINAL_SAMPLING_ERROR", e.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public synchronized void stopResourceSampling(Promise promise) {
+        cancelSampling();
+        promise.resolve(null);
+    }
+
+    @Override
+    public void invalidate() {
+        List<TerminalSession> remaining;
+        synchronized (this) {
+            cancelSampling();
+            if (samplerExecutor != null) {
+                samplerExecutor.shutdownNow();
+                samplerExecutor = null;
+            }
+            remaining = new ArrayList<>(sessions.values());
+            sessions.clear();
+        }
+        for (TerminalSession session : remaining) {
+            session.stop();
+        }
+        super.invalidate();
+    }
+
+    private void cancelSampling() {
+        if (samplerTask != null) {
+            samplerTask.cancel(false);
+            samplerTask = null;
+        }
+        // Never leave a session paused once nobody is managing its limits
+        for (TerminalSession session : sessions.values()) {
+            resumeThrottled(session);
+        }
+    }
+
+    private void sampleSessions() {
+        List<TerminalSession> killed = new ArrayList<>();
+        WritableMap event;
+        try {
+            synchronized (this) {
+                if (samplerTask == null) {
+                    return;
+                }
+                event = collectUsage(killed);
+            }
+        } catch (Exception e) {
+            // Keep the schedule alive; a failed tick is retried on the next one
+            Log.w(MODULE_NAME, "Resource sampling tick failed", e);
+            return;
+        }
+
+        // stop() waits for the output thread, so keep it out of the lock
+        for (TerminalSession session : killed) {
+            session.stop();
+        }
+        sendEvent(RESOURCE_USAGE_EVENT, event);
+    }
+
+    private WritableMap collectUsage(List<TerminalSession> killed) {
+        // Safety net in case a scheduled resume hasn't run yet
+        for (TerminalSession session : sessions.values()) {
+            resumeThrottled(session);
+        }
+
+        sampler.refresh();
+        long now = SystemClock.elapsedRealtime();
+        WritableArray batch = Arguments.createArray();
+
+        for (TerminalSession session : sessions.values()) {
+            if (session.pid <= 0) {
+                continue;
+            }
+            ProcessSampler.Usage usage = sampler.sample(session.pid, session.startTime);
+            if (usage == null) {
+                continue;
+            }
+
+            // cpuPercent is what the tree actually used; demandPercent is what it
+            // used while not paused, which is what the throttle has to scale down
+            double cpuPercent = 0;
+            double demandPercent = 0;
+            long elapsedMs = session.lastSampleAt > 0 ? now - session.lastSampleAt : 0;
+            if (elapsedMs > 0) {
+                long cpuDeltaMs = Math.max(0, usage.cpuTimeMs - session.lastCpuTimeMs);
+                long runningMs = elapsedMs - session.stoppedMs;
+                cpuPercent = cpuDeltaMs * 100.0 / elapsedMs;
+                demandPercent = runningMs > 0 ? cpuDeltaMs * 100.0 / runningMs : cpuPercent;
+            }
+            session.lastCpuTimeMs = usage.cpuTimeMs;
+            session.lastSampleAt = now;
+            session.stoppedMs = 0;
+
+            String action = "none";
+            boolean overRss = rssLimitBytes > 0 && usage.rssBytes > rssLimitBytes;
+            boolean overCpu = cpuLimitPercent > 0 && demandPercent > cpuLimitPercent;
+            if (overRss || (overCpu && killOnCpuLimit)) {
+                signalAll(usage.pids, OsConstants.SIGKILL);
+                sessions.remove(session.sessionId);
+                killed.add(session);
+                action = "killed";
+            } else if (overCpu) {
+                long stopMs = (long) (sampleIntervalMs * (1 - cpuLimitPercent / demandPercent));
+                if (stopMs >= MIN_THROTTLE_MS) {
+                    throttle(session, usage.pids, stopMs, now);
+                    action = "throttled";
+                }
+            }
+
+            WritableMap entry = Arguments.createMap();
+            entry.putString("sessionId", session.sessionId);
+            entry.putInt("pid", session.pid);
+            entry.putInt("processCount", usage.pids.size());
+            entry.putDouble("cpuTimeMs", usage.cpuTimeMs);
+            entry.putDouble("cpuPercent", cpuPercent);
+            entry.putDouble("rssBytes", usage.rssBytes);
+            entry.putInt("threadCount", usage.threadCount);
+            entry.putDouble("readBytes", usage.readBytes);
+            entry.putDouble("writeBytes", usage.writeBytes);
+            entry.putString("limitAction", action);
+            batch.pushMap(entry);
+        }
+
+        WritableMap event = Arguments.createMap();
+        event.putDouble("timestamp", System.currentTimeMillis());
+        event.putArray("sessions", batch);
+        return event;
+    }
+
+    private void throttle(TerminalSession session, List<Integer> pids, long stopMs, long now) {
+        signalAll(pids, OsConstants.SIGSTOP);
+        session.throttledPids = pids;
+        session.throttledAt = now;
+        samplerExecutor.schedule(() -> {
+            synchronized (TerminalModule.this) {
+                // Skip if the session was already resumed, killed or re-throttled
+                if (session.throttledPids == pids) {
+                    resumeThrottled(session);
+                }
+            }
+        }, stopMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void resumeThrottled(TerminalSession session) {
+        List<Integer> paused = session.throttledPids;
+        if (paused != null) {
+            signalAll(paused, OsConstants.SIGCONT);
+            session.stoppedMs += SystemClock.elapsedRealtime() - session.throttledAt;
+            session.throttledPids = null;
+        }
+    }
+
+    private static void signalAll(List<Integer> pids, int signal) {
+        for (int pid : pids) {
+            android.os.Process.sendSignal(pid, signal);
+        }
+    }
+
     @ReactMethod
     public void executeCommand(String command, String workingDirectory, Promise promise) {
         try {
@@ -104,6 +349,16 @@ public class TerminalModule extends ReactContextBaseJavaModule {
         }
     }
 
+    private List<Integer> claimedPids() {
+        List<Integer> pids = new ArrayList<>();
+        for (TerminalSession session : sessions.values()) {
+            if (session.pid > 0) {
+                pids.add(session.pid);
+            }
+        }
+        return pids;
+    }
+
     private void sendEvent(String eventName, WritableMap params) {
         getReactApplicationContext()
             .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
@@ -115,6 +370,14 @@ public class TerminalModule extends ReactContextBaseJavaModule {
         private final String command;
         private final String workingDirectory;
         private Process process;
+        // Cleared once the shell exits so a reused pid is never sampled or signalled
+        private volatile int pid = -1;
+        private long startTime = -1;
+        private long lastCpuTimeMs;
+        private long lastSampleAt;
+        private long stoppedMs;
+        private long throttledAt;
+        private List<Integer> throttledPids;
         private BufferedReader reader;
         private OutputStreamWriter writer;
         private Thread outputThread;
@@ -133,6 +396,16 @@ public class TerminalModule extends ReactContextBaseJavaModule {
             }
             
             process = pb.start();
+            pid = ProcessSampler.pidOf(process);
+            if (pid <= 0) {
+                pid = ProcessSampler.findChildPid(command, claimedPids());
+            }
+            if (pid <= 0) {
+                Log.w(MODULE_NAME, "Could not determine pid for terminal session " + sessionId
+                    + "; resource sampling and limits will skip it");
+            } else {
+                startTime = ProcessSampler.startTimeOf(pid);
+            }
             reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
             writer = new OutputStreamWriter(process.getOutputStream());
             isRunning = true;
@@ -150,6 +423,15 @@ public class TerminalModule extends ReactContextBaseJavaModule {
                 } catch (Exception e) {
                     // Handle error
                 }
+                try {
+                    process.waitFor();
+                } catch (InterruptedException e) {
+                    // Fall through; the process is being torn down anyway
+                }
+                synchronized (TerminalModule.this) {
+                    resumeThrottled(this);
+                    pid = -1;
+                }
             });
             outputThread.start();
         }
@@ -0,0 +1,117 @@
+package com.crystalandroid.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+public class ProcessSamplerTest {
+    // pid (comm) state ppid pgrp session tty tpgid flags minflt cminflt majflt cmajflt
+    // utime stime cutime cstime priority nice num_threads itrealvalue starttime vsize rss ...
+    private static final String STAT =
+        "1234 (sh) S 1000 1234 1234 0 -1 4194560 500 0 0 0 "
+            + "70 30 200 100 20 0 3 0 98765 10485760 256 18446744073709551615";
+
+    private static ProcessSampler.ProcStat stat(int ppid, long cpuTicks, long rssPages, int threads) {
+        ProcessSampler.ProcStat ps = new ProcessSampler.ProcStat();
+        ps.ppid = ppid;
+        ps.cpuTicks = cpuTicks;
+        ps.rssPages = rssPages;
+        ps.threads = threads;
+        return ps;
+    }
+
+    @Test
+    public void parseStat_readsFields() {
+        ProcessSampler.ProcStat ps = ProcessSampler.parseStat(STAT);
+
+        assertEquals(1000, ps.ppid);
+        assertEquals(70 + 30 + 200 + 100, ps.cpuTicks);
+        assertEquals(3, ps.threads);
+        assertEquals(98765, ps.startTime);
+        assertEquals(256, ps.rssPages);
+    }
+
+    @Test
+    public void parseStat_handlesParenthesesAndSpacesInComm() {
+        String line = STAT.replace("(sh)", "(my (weird) proc)");
+
+        ProcessSampler.ProcStat ps = ProcessSampler.parseStat(line);
+
+        assertEquals(1000, ps.ppid);
+        assertEquals(256, ps.rssPages);
+    }
+
+    @Test
+    public void parseStat_rejectsMalformedLines() {
+        assertNull(ProcessSampler.parseStat(null));
+        assertNull(ProcessSampler.parseStat(""));
+        assertNull(ProcessSampler.parseStat("1234 (sh)"));
+        assertNull(ProcessSampler.parseStat("1234 (sh) S 1000 1234"));
+        assertNull(ProcessSampler.parseStat(STAT.replace(" 70 ", " x ")));
+    }
+
+    @Test
+    public void parseIoLine_sumsDiskCounters() {
+        ProcessSampler.Usage usage = new ProcessSampler.Usage();
+
+        ProcessSampler.parseIoLine("rchar: 9999", usage);
+        ProcessSampler.parseIoLine("read_bytes: 4096", usage);
+        ProcessSampler.parseIoLine("write_bytes: 8192", usage);
+        ProcessSampler.parseIoLine("cancelled_write_bytes: 100", usage);
+        ProcessSampler.parseIoLine("read_bytes: 1", usage);
+        ProcessSampler.parseIoLine("write_bytes: bogus", usage);
+
+        assertEquals(4097, usage.readBytes);
+        assertEquals(8192, usage.writeBytes);
+    }
+
+    @Test
+    public void parsePid_acceptsOnlyNumericNames() {
+        assertEquals(42, ProcessSampler.parsePid("42"));
+        assertEquals(-1, ProcessSampler.parsePid("self"));
+        assertEquals(-1, ProcessSampler.parsePid(""));
+        assertEquals(-1, ProcessSampler.parsePid("99999999999"));
+    }
+
+    @Test
+    public void aggregate_sumsWholeTreeOnly() {
+        ProcessSampler sampler = new ProcessSampler();
+        sampler.put(10, stat(1, 100, 50, 1));
+        sampler.put(11, stat(10, 20, 5, 2));
+        sampler.put(12, stat(11, 3, 1, 1));
+        sampler.put(20, stat(1, 1000, 500, 8));
+
+        ProcessSampler.Usage usage = sampler.aggregate(10, 0);
+
+        assertEquals(new HashSet<>(Arrays.asList(10, 11, 12)), new HashSet<>(usage.pids));
+        assertEquals(123, usage.cpuTicks);
+        assertEquals(56, usage.rssPages);
+        assertEquals(4, usage.threadCount);
+    }
+
+    @Test
+    public void aggregate_returnsNullForMissingRoot() {
+        ProcessSampler sampler = new ProcessSampler();
+        sampler.put(10, stat(1, 100, 50, 1));
+
+        assertNull(sampler.aggregate(99, 0));
+        assertTrue(sampler.aggregate(10, 0).pids.contains(10));
+    }
+
+    @Test
+    public void aggregate_returnsNullWhenRootPidWasReused() {
+        ProcessSampler sampler = new ProcessSampler();
+        ProcessSampler.ProcStat reused = stat(1, 100, 50, 1);
+        reused.startTime = 5000;
+        sampler.put(10, reused);
+        sampler.put(11, stat(10, 20, 5, 2));
+
+        assertNull(sampler.aggregate(10, 1200));
+        assertEquals(120, sampler.aggregate(10, 5000).cpuTicks);
+    }
+}
\ No newline at end of file
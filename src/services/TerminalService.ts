@@ -1,5 +1,7 @@
 import { NativeModules, NativeEventEmitter } from 'react-native';
-import { TerminalSession } from '../types';
+import { ProcessResourceUsage, ResourceSamplingOptions, ResourceUsageEvent, TerminalSession } from '../types';
+import { DatabaseService } from './DatabaseService';
+import { useSessionStore } from '../stores/sessionStore';
 
 const { TerminalModule } = NativeModules;
 const terminalEventEmitter = new NativeEventEmitter(TerminalModule);
@@ -7,19 +9,37 @@ const terminalEventEmitter = new NativeEventEmitter(TerminalModule);
 export class TerminalService {
   private static sessions: Map<string, TerminalSession> = new Map();
   private static listeners: Map<string, any> = new Map();
+  private static resourceListener: any = null;
 
-  static async createSession(command: string, workingDirectory?: string): Promise<string> {
+  /**
+   * Starts a terminal session. When `ownerSessionId` is given, the native pid is
+   * written to that Session (store and database) and cleared when the terminal ends.
+   */
+  static async createSession(
+    command: string,
+    workingDirectory?: string,
+    ownerSessionId?: string
+  ): Promise<string> {
     const sessionId = await TerminalModule.createSession(command, workingDirectory);
-    
+
+    let pid: number | undefined;
+    try {
+      pid = await TerminalModule.getSessionPid(sessionId);
+    } catch (error) {
+      console.warn(`No pid for terminal session ${sessionId}; resource sampling will skip it:`, error);
+    }
+
     const session: TerminalSession = {
       id: sessionId,
+      pid,
+      ownerSessionId,
       command,
       output: [],
       isRunning: true,
     };
-    
+
     this.sessions.set(sessionId, session);
-    
+
     // Listen for output
     const listener = terminalEventEmitter.addListener(
       `terminal_output_${sessionId}`,
@@ -30,9 +50,13 @@ export class TerminalService {
         }
       }
     );
-    
+
     this.listeners.set(sessionId, listener);
-    
+
+    if (ownerSessionId && pid !== undefined) {
+      await this.updateOwnerPid(ownerSessionId, pid);
+    }
+
     return sessionId;
   }
 
@@ -41,15 +65,16 @@ export class TerminalService {
   }
 
   static async killSession(sessionId: string): Promise<void> {
-    await TerminalModule.killSession(sessionId);
-    
-    const listener = this.listeners.get(sessionId);
-    if (listener) {
-      listener.remove();
-      this.listeners.delete(sessionId);
+    try {
+      await TerminalModule.killSession(sessionId);
+    } catch (error: any) {
+      // Already gone on the native side, e.g. killed by a resource limit
+      if (error?.code !== 'SESSION_NOT_FOUND') {
+        throw error;
+      }
     }
-    
-    this.sessions.delete(sessionId);
+
+    await this.cleanupSession(sessionId);
   }
 
   static getSession(sessionId: string): TerminalSession | undefined {
@@ -60,7 +85,72 @@ export class TerminalService {
     return Array.from(this.sessions.values());
   }
 
+  static async startResourceSampling(
+    options: ResourceSamplingOptions,
+    onUsage?: (usage: ProcessResourceUsage[]) => void
+  ): Promise<void> {
+    this.resourceListener?.remove();
+    this.resourceListener = terminalEventEmitter.addListener(
+      'terminal_resource_usage',
+      (event: ResourceUsageEvent) => {
+        event.sessions.forEach((usage) => {
+          const currentSession = this.sessions.get(usage.sessionId);
+          if (currentSession) {
+            currentSession.resourceUsage = usage;
+            if (usage.limitAction === 'killed') {
+              // Native has already dropped the session, so release ours too
+              currentSession.isRunning = false;
+              this.cleanupSession(usage.sessionId).catch((error) =>
+                console.warn(`Failed to clean up terminal session ${usage.sessionId}:`, error)
+              );
+            }
+          }
+        });
+        onUsage?.(event.sessions);
+      }
+    );
+
+    try {
+      await TerminalModule.startResourceSampling(options);
+    } catch (error) {
+      this.resourceListener.remove();
+      this.resourceListener = null;
+      throw error;
+    }
+  }
+
+  static async stopResourceSampling(): Promise<void> {
+    await TerminalModule.stopResourceSampling();
+
+    this.resourceListener?.remove();
+    this.resourceListener = null;
+  }
+
   static async executeCommand(command: string, workingDirectory?: string): Promise<string> {
     return TerminalModule.executeCommand(command, workingDirectory);
   }
+
+  private static async cleanupSession(sessionId: string): Promise<void> {
+    const listener = this.listeners.get(sessionId);
+    if (listener) {
+      listener.remove();
+      this.listeners.delete(sessionId);
+    }
+
+    const session = this.sessions.get(sessionId);
+    this.sessions.delete(sessionId);
+
+    if (session?.ownerSessionId) {
+      await this.updateOwnerPid(session.ownerSessionId, undefined);
+    }
+  }
+
+  private static async updateOwnerPid(ownerSessionId: string, pid: number | undefined): Promise<void> {
+    useSessionStore.getState().updateSession(ownerSessionId, { pid });
+    try {
+      await DatabaseService.getInstance().updateSession(ownerSessionId, { pid });
+    } catch (error) {
+      console.warn(`Failed to persist pid for session ${ownerSessionId}:`, error);
+    }
+  }
 }
\ No newline at end of file
@@ -21,6 +21,34 @@ export interface TerminalSession {
   id: string;
   command: string;
   output: string[];
+  pid?: number;
+  ownerSessionId?: string;
   exitCode?: number;
   isRunning: boolean;
+  resourceUsage?: ProcessResourceUsage;
+}
+
+export interface ResourceSamplingOptions {
+  intervalMs?: number;
+  cpuLimitPercent?: number;
+  rssLimitBytes?: number;
+  limitAction?: 'throttle' | 'kill';
+}
+
+export interface ProcessResourceUsage {
+  sessionId: string;
+  pid: number;
+  processCount: number;
+  cpuTimeMs: number;
+  cpuPercent: number;
+  rssBytes: number;
+  threadCount: number;
+  readBytes: number;
+  writeBytes: number;
+  limitAction: 'none' | 'throttled' | 'killed';
+}
+
+export interface ResourceUsageEvent {
+  timestamp: number;
+  sessions: ProcessResourceUsage[];
 }
\ No newline at end of file